@@ -0,0 +1,368 @@
+/*
+ * Copyright 2019 Antony T Curtis <atcurtis@gmail.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.xiphis.wooting;
+
+/**
+ * Colour math on packed {@code 0xRRGGBB} integers using fixed-point arithmetic.
+ *
+ * Hue is expressed in the range {@code 0 .. HUE_RANGE - 1} (256 steps per 60 degree sector),
+ * saturation, value and lightness in {@code 0 .. 255} and interpolation weights in
+ * {@code 0 .. 256}. HSV and HSL colours are packed as {@code hue << 16 | saturation << 8 | value}.
+ *
+ * The array variants process whole frames with simple counted loops over the packed values;
+ * none of them allocate.
+ */
+public final class ColorKernels {
+
+  public static final int HUE_RANGE = 6 * 256;
+  public static final int WEIGHT_ONE = 256;
+
+  private static final int RB_MASK = 0xff00ff;
+  private static final int G_MASK = 0x00ff00;
+
+  private ColorKernels() {
+  }
+
+  public enum Blend {
+    ADD,
+    SUBTRACT,
+    MULTIPLY,
+    SCREEN,
+    LIGHTEN,
+    DARKEN,
+    AVERAGE
+  }
+
+  public static int pack(int red, int green, int blue) {
+    return (0xff & red) << 16 | (0xff & green) << 8 | (0xff & blue);
+  }
+
+  public static int red(int rgb) {
+    return 0xff & (rgb >>> 16);
+  }
+
+  public static int green(int rgb) {
+    return 0xff & (rgb >>> 8);
+  }
+
+  public static int blue(int rgb) {
+    return 0xff & rgb;
+  }
+
+  public static int packHSV(int hue, int saturation, int value) {
+    return wrapHue(hue) << 16 | (0xff & saturation) << 8 | (0xff & value);
+  }
+
+  public static int packHSL(int hue, int saturation, int lightness) {
+    return packHSV(hue, saturation, lightness);
+  }
+
+  public static int hue(int hsv) {
+    return 0x7ff & (hsv >>> 16);
+  }
+
+  public static int saturation(int hsv) {
+    return 0xff & (hsv >>> 8);
+  }
+
+  public static int value(int hsv) {
+    return 0xff & hsv;
+  }
+
+  public static int lightness(int hsl) {
+    return 0xff & hsl;
+  }
+
+  public static int wrapHue(int hue) {
+    hue %= HUE_RANGE;
+    return hue < 0 ? hue + HUE_RANGE : hue;
+  }
+
+  // Rounded division by 255, exact for the range 0 .. 255 * 255
+  private static int div255(int x) {
+    x += 128;
+    return (x + (x >> 8)) >> 8;
+  }
+
+  // Subtracts HUE_RANGE from k when k >= HUE_RANGE, without a branch
+  private static int wrapSector(int k) {
+    return k - (HUE_RANGE & ((HUE_RANGE - 1 - k) >> 31));
+  }
+
+  private static int clamp(int x, int min, int max) {
+    return Math.max(min, Math.min(max, x));
+  }
+
+  //
+  // HSV / HSL conversion
+  //
+
+  public static int hsvToRgb(int hsv) {
+    int h = hue(hsv);
+    int v = value(hsv);
+    int vs = div255(v * saturation(hsv));
+    return hsvChannel(5, h, v, vs) << 16 | hsvChannel(3, h, v, vs) << 8 | hsvChannel(1, h, v, vs);
+  }
+
+  private static int hsvChannel(int n, int h, int v, int vs) {
+    int k = wrapSector(n * 256 + h);
+    int w = clamp(Math.min(k, 4 * 256 - k), 0, 256);
+    return v - ((vs * w) >> 8);
+  }
+
+  public static int hslToRgb(int hsl) {
+    int h = hue(hsl);
+    int l = lightness(hsl);
+    int a = div255(saturation(hsl) * Math.min(l, 255 - l));
+    return hslChannel(0, h, l, a) << 16 | hslChannel(8, h, l, a) << 8 | hslChannel(4, h, l, a);
+  }
+
+  private static int hslChannel(int n, int h, int l, int a) {
+    int k = wrapSector(n * 128 + h);
+    int w = clamp(Math.min(k - 3 * 128, 9 * 128 - k), -128, 128);
+    return clamp(l - ((a * w) >> 7), 0, 255);
+  }
+
+  public static int rgbToHsv(int rgb) {
+    int r = red(rgb);
+    int g = green(rgb);
+    int b = blue(rgb);
+    int max = Math.max(r, Math.max(g, b));
+    int chroma = max - Math.min(r, Math.min(g, b));
+    int s = max == 0 ? 0 : (chroma * 255 + max / 2) / max;
+    return hueOf(r, g, b, max, chroma) << 16 | s << 8 | max;
+  }
+
+  public static int rgbToHsl(int rgb) {
+    int r = red(rgb);
+    int g = green(rgb);
+    int b = blue(rgb);
+    int max = Math.max(r, Math.max(g, b));
+    int min = Math.min(r, Math.min(g, b));
+    int chroma = max - min;
+    int sum = max + min;
+    int divisor = 255 - Math.abs(sum - 255);
+    int s = divisor == 0 ? 0 : Math.min(255, (chroma * 255 + divisor / 2) / divisor);
+    return hueOf(r, g, b, max, chroma) << 16 | s << 8 | (sum + 1) >> 1;
+  }
+
+  private static int hueOf(int r, int g, int b, int max, int chroma) {
+    if (chroma == 0) {
+      return 0;
+    } else if (max == r) {
+      return wrapHue((g - b) * 256 / chroma);
+    } else if (max == g) {
+      return 2 * 256 + (b - r) * 256 / chroma;
+    } else {
+      return 4 * 256 + (r - g) * 256 / chroma;
+    }
+  }
+
+  public static void hsvToRgb(int[] hsv, int[] out, int length) {
+    for (int i = 0; i < length; i++) {
+      out[i] = hsvToRgb(hsv[i]);
+    }
+  }
+
+  public static void hslToRgb(int[] hsl, int[] out, int length) {
+    for (int i = 0; i < length; i++) {
+      out[i] = hslToRgb(hsl[i]);
+    }
+  }
+
+  public static void rgbToHsv(int[] rgb, int[] out, int length) {
+    for (int i = 0; i < length; i++) {
+      out[i] = rgbToHsv(rgb[i]);
+    }
+  }
+
+  public static void rgbToHsl(int[] rgb, int[] out, int length) {
+    for (int i = 0; i < length; i++) {
+      out[i] = rgbToHsl(rgb[i]);
+    }
+  }
+
+  //
+  // Interpolation, gradients and palettes
+  //
+
+  /**
+   * Linear interpolation between two packed colours, {@code weight} is {@code 0 .. WEIGHT_ONE}.
+   */
+  public static int lerp(int from, int to, int weight) {
+    int inverse = WEIGHT_ONE - weight;
+    int rb = ((from & RB_MASK) * inverse + (to & RB_MASK) * weight) >>> 8;
+    int g = ((from & G_MASK) * inverse + (to & G_MASK) * weight) >>> 8;
+    return (rb & RB_MASK) | (g & G_MASK);
+  }
+
+  public static void lerp(int[] from, int[] to, int[] out, int weight, int length) {
+    int inverse = WEIGHT_ONE - weight;
+    for (int i = 0; i < length; i++) {
+      int a = from[i];
+      int b = to[i];
+      int rb = ((a & RB_MASK) * inverse + (b & RB_MASK) * weight) >>> 8;
+      int g = ((a & G_MASK) * inverse + (b & G_MASK) * weight) >>> 8;
+      out[i] = (rb & RB_MASK) | (g & G_MASK);
+    }
+  }
+
+  /**
+   * Scales the brightness of every colour in the frame, {@code level} is {@code 0 .. WEIGHT_ONE}.
+   */
+  public static void scale(int[] frame, int[] out, int level, int length) {
+    for (int i = 0; i < length; i++) {
+      int c = frame[i];
+      int rb = ((c & RB_MASK) * level) >>> 8;
+      int g = ((c & G_MASK) * level) >>> 8;
+      out[i] = (rb & RB_MASK) | (g & G_MASK);
+    }
+  }
+
+  /**
+   * Fills {@code out} with evenly spaced colours passing through each of the colour stops.
+   */
+  public static int[] gradient(int[] out, int... stops) {
+    if (stops.length == 0) {
+      throw new IllegalArgumentException("No colour stops");
+    }
+    int segments = stops.length - 1;
+    int last = out.length - 1;
+    for (int i = 0; i <= last; i++) {
+      int position = last == 0 ? 0 : (int) ((long) i * segments * WEIGHT_ONE / last);
+      int segment = Math.min(position >> 8, Math.max(0, segments - 1));
+      int weight = position - segment * WEIGHT_ONE;
+      out[i] = segments == 0 ? stops[0] : lerp(stops[segment], stops[segment + 1], weight);
+    }
+    return out;
+  }
+
+  public static int[] palette(int size, int... stops) {
+    return gradient(new int[size], stops);
+  }
+
+  /**
+   * Looks up the palette colour of every index, clamping indices to the palette bounds.
+   */
+  public static void lookup(int[] indices, int[] palette, int[] out, int length) {
+    int last = palette.length - 1;
+    for (int i = 0; i < length; i++) {
+      out[i] = palette[clamp(indices[i], 0, last)];
+    }
+  }
+
+  //
+  // Blend modes
+  //
+
+  public static int blend(Blend mode, int under, int over) {
+    switch (mode) {
+      case ADD:
+        return add(under, over);
+      case SUBTRACT:
+        return subtract(under, over);
+      case MULTIPLY:
+        return multiply(under, over);
+      case SCREEN:
+        return screen(under, over);
+      case LIGHTEN:
+        return lighten(under, over);
+      case DARKEN:
+        return darken(under, over);
+      case AVERAGE:
+        return average(under, over);
+      default:
+        throw new IllegalArgumentException(String.valueOf(mode));
+    }
+  }
+
+  /**
+   * Blends two frames with the given mode. The mode is resolved once so that each
+   * loop body is straight-line code; {@code out} may be the same array as either input.
+   */
+  public static void blend(Blend mode, int[] under, int[] over, int[] out, int length) {
+    switch (mode) {
+      case ADD:
+        for (int i = 0; i < length; i++) {
+          out[i] = add(under[i], over[i]);
+        }
+        break;
+      case SUBTRACT:
+        for (int i = 0; i < length; i++) {
+          out[i] = subtract(under[i], over[i]);
+        }
+        break;
+      case MULTIPLY:
+        for (int i = 0; i < length; i++) {
+          out[i] = multiply(under[i], over[i]);
+        }
+        break;
+      case SCREEN:
+        for (int i = 0; i < length; i++) {
+          out[i] = screen(under[i], over[i]);
+        }
+        break;
+      case LIGHTEN:
+        for (int i = 0; i < length; i++) {
+          out[i] = lighten(under[i], over[i]);
+        }
+        break;
+      case DARKEN:
+        for (int i = 0; i < length; i++) {
+          out[i] = darken(under[i], over[i]);
+        }
+        break;
+      case AVERAGE:
+        for (int i = 0; i < length; i++) {
+          out[i] = average(under[i], over[i]);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException(String.valueOf(mode));
+    }
+  }
+
+  public static int add(int a, int b) {
+    return Math.min(255, red(a) + red(b)) << 16
+        | Math.min(255, green(a) + green(b)) << 8
+        | Math.min(255, blue(a) + blue(b));
+  }
+
+  public static int subtract(int a, int b) {
+    return Math.max(0, red(a) - red(b)) << 16
+        | Math.max(0, green(a) - green(b)) << 8
+        | Math.max(0, blue(a) - blue(b));
+  }
+
+  public static int multiply(int a, int b) {
+    return div255(red(a) * red(b)) << 16
+        | div255(green(a) * green(b)) << 8
+        | div255(blue(a) * blue(b));
+  }
+
+  public static int screen(int a, int b) {
+    return ~multiply(~a, ~b) & 0xffffff;
+  }
+
+  public static int lighten(int a, int b) {
+    return Math.max(red(a), red(b)) << 16
+        | Math.max(green(a), green(b)) << 8
+        | Math.max(blue(a), blue(b));
+  }
+
+  public static int darken(int a, int b) {
+    return Math.min(red(a), red(b)) << 16
+        | Math.min(green(a), green(b)) << 8
+        | Math.min(blue(a), blue(b));
+  }
+
+  public static int average(int a, int b) {
+    // Per channel (a + b) / 2 without carries crossing channel boundaries
+    return ((a & b) + (((a ^ b) & 0xfefefe) >>> 1)) & 0xffffff;
+  }
+}
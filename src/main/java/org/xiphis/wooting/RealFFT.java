@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Antony T Curtis <atcurtis@gmail.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.xiphis.wooting;
+
+/**
+ * Windowed FFT of real input, computed as a half size complex FFT with all tables and work
+ * buffers allocated up front so that {@link #magnitudes(float[], float[])} never allocates.
+ */
+final class RealFFT {
+
+  private final int size;
+  private final int half;
+  private final float[] window;
+  private final float[] cos;
+  private final float[] sin;
+  private final int[] reverse;
+  private final float[] re;
+  private final float[] im;
+
+  RealFFT(int size) {
+    if (size < 4 || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("size must be a power of two");
+    }
+    this.size = size;
+    this.half = size / 2;
+    this.window = new float[size];
+    this.cos = new float[half];
+    this.sin = new float[half];
+    this.reverse = new int[half];
+    this.re = new float[half];
+    this.im = new float[half];
+
+    // Hann window
+    for (int i = 0; i < size; i++) {
+      window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+    }
+    // Twiddles for the full size, used by both the half size FFT (even entries) and the split
+    for (int i = 0; i < half; i++) {
+      cos[i] = (float) Math.cos(2 * Math.PI * i / size);
+      sin[i] = (float) -Math.sin(2 * Math.PI * i / size);
+    }
+    int bits = Integer.numberOfTrailingZeros(half);
+    for (int i = 0; i < half; i++) {
+      reverse[i] = Integer.reverse(i) >>> (32 - bits);
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Windows {@code input} (length {@code size}) and writes the magnitude of each of the
+   * {@code size / 2 + 1} frequency bins into {@code out}.
+   */
+  void magnitudes(float[] input, float[] out) {
+    // Pack even samples as real and odd samples as imaginary parts
+    for (int i = 0; i < half; i++) {
+      int j = reverse[i];
+      re[j] = input[2 * i] * window[2 * i];
+      im[j] = input[2 * i + 1] * window[2 * i + 1];
+    }
+
+    for (int length = 2; length <= half; length <<= 1) {
+      int span = length >> 1;
+      int stride = size / length;
+      for (int base = 0; base < half; base += length) {
+        for (int k = 0; k < span; k++) {
+          float wr = cos[k * stride];
+          float wi = sin[k * stride];
+          int a = base + k;
+          int b = a + span;
+          float tr = re[b] * wr - im[b] * wi;
+          float ti = re[b] * wi + im[b] * wr;
+          re[b] = re[a] - tr;
+          im[b] = im[a] - ti;
+          re[a] += tr;
+          im[a] += ti;
+        }
+      }
+    }
+
+    // Split the packed spectrum into the spectrum of the real input
+    out[0] = Math.abs(re[0] + im[0]);
+    out[half] = Math.abs(re[0] - im[0]);
+    for (int k = 1; k < half; k++) {
+      float zr = re[k];
+      float zi = im[k];
+      float cr = re[half - k];
+      float ci = -im[half - k];
+      float er = 0.5f * (zr + cr);
+      float ei = 0.5f * (zi + ci);
+      float or = 0.5f * (zi - ci);
+      float oi = -0.5f * (zr - cr);
+      float xr = er + or * cos[k] - oi * sin[k];
+      float xi = ei + or * sin[k] + oi * cos[k];
+      out[k] = (float) Math.sqrt(xr * xr + xi * xi);
+    }
+  }
+}
@@ -62,9 +62,19 @@ public class WootingRGB implements AutoCloseable {
   };
 
   private final HidDevice device;
+  private final ReportSink output;
   private final Bank[] banks;
   private boolean autoUpdate = true;
 
+  // Report budget state, only used when reportBudget > 0
+  private volatile int reportBudget;
+  private long reportIntervalNanos;
+  private long reportCreditNanos;
+  private long reportCreditTime;
+  private final long[] bankScores = new long[5];
+
+  static final int ALL_BANKS = (1 << 5) - 1;
+
   public WootingRGB(HidDeviceInfo hidDeviceInfo) throws IOException {
     if (!vendorFilter(hidDeviceInfo)) {
       throw new IOException("Unsupported Vendor ID");
@@ -76,21 +86,34 @@ public class WootingRGB implements AutoCloseable {
       throw new IOException("Failed to send init command");
     }
 
-    Bank[] banks = {
+    device.setDeviceRemovalListener(this::deviceRemoved);
+    device.setInputReportListener(this::inputReport);
+    device.getFeatureReport(new byte[1], 0);
+
+    this.device = device;
+    this.output = (report, length) -> device.setOutputReport((byte) 0, report, length) == length;
+    this.banks = newBanks();
+  }
+
+  // Sends colour reports somewhere other than a device, so the banks can be driven in tests
+  WootingRGB(ReportSink output) {
+    this.device = null;
+    this.output = output;
+    this.banks = newBanks();
+  }
+
+  interface ReportSink {
+    boolean sendReport(byte[] report, int length);
+  }
+
+  private Bank[] newBanks() {
+    return new Bank[] {
         new Bank(NIL, NIL),
         new Bank(NIL, RGB_RAW_BUFFER_SIZE),
         new Bank((byte) 1, NIL),
         new Bank((byte) 1, RGB_RAW_BUFFER_SIZE),
         new Bank((byte) 2, NIL),
     };
-
-
-    device.setDeviceRemovalListener(this::deviceRemoved);
-    device.setInputReportListener(this::inputReport);
-    device.getFeatureReport(new byte[1], 0);
-
-    this.device = device;
-    this.banks = banks;
   }
 
   private void inputReport(HidDevice source, byte reportID, byte[] reportData, int reportLength) {
@@ -142,10 +165,16 @@ public class WootingRGB implements AutoCloseable {
 
   @Override
   public void close() {
-    device.close();
+    if (device != null) {
+      device.close();
+    }
   }
 
   public boolean resetRGB() {
+    // The keyboard no longer shows what was last sent, even if the reset was not acknowledged
+    for (Bank bank : banks) {
+      bank.invalidate();
+    }
     return sendFeature(device, WOOTING_RESET_ALL_COMMAND, NIL, NIL, NIL, NIL);
   }
 
@@ -217,22 +246,212 @@ public class WootingRGB implements AutoCloseable {
     }
   }
 
+  /**
+   * Returns the packed {@code 0xRRGGBB} colour currently buffered for the key, or {@code -1}
+   * when there is no LED at that position.
+   */
+  public int getRGB(int row, int col) {
+    byte led_index = getSafeLEDIndex(row, col);
+
+    if (led_index == NOLED) {
+      return -1;
+    }
+    return banks[led_index / 24].getRGB(led_index % 24);
+  }
+
+  public boolean setRGB(int row, int col, int rgb) {
+    if (!setRGB0(row, col, rgb)) {
+      return false;
+    }
+
+    if (autoUpdate) {
+      return updateKeyboard();
+    } else {
+      return true;
+    }
+  }
+
+  /**
+   * Sets every key from a packed {@code 0xRRGGBB} frame laid out as
+   * {@code frame[row * WOOTING_RGB_COLS + col]} and updates the keyboard once.
+   */
+  public boolean setFrame(int[] frame) {
+    if (frame.length < WOOTING_RGB_ROWS * WOOTING_RGB_COLS) {
+      throw new IllegalArgumentException("Frame too small");
+    }
+    for (int row = 0, index = 0; row < WOOTING_RGB_ROWS; row++) {
+      for (int col = 0; col < WOOTING_RGB_COLS; col++, index++) {
+        setRGB0(row, col, frame[index]);
+      }
+    }
+
+    if (autoUpdate) {
+      return updateKeyboard();
+    } else {
+      return true;
+    }
+  }
+
+  public int getReportBudget() {
+    return reportBudget;
+  }
+
+  /**
+   * Limits the number of colour reports sent per second, or removes the limit when
+   * {@code reportsPerSecond} is zero. While limited, {@link #updateKeyboard()} sends the
+   * changed banks with the largest visible error first and defers the rest.
+   *
+   * Deferred banks are only sent by a later call to {@link #updateKeyboard()}; nothing flushes
+   * them on its own, so a caller which stops writing must keep calling {@link #updateKeyboard()}
+   * while {@link #hasDeferredUpdates()} returns true.
+   */
+  public synchronized void setReportBudget(int reportsPerSecond) {
+    if (reportsPerSecond < 0 || reportsPerSecond > 1000000000) {
+      throw new IllegalArgumentException("reportsPerSecond must be between 0 and 1000000000");
+    }
+    reportBudget = reportsPerSecond;
+    if (reportsPerSecond > 0) {
+      reportIntervalNanos = 1000000000L / reportsPerSecond;
+      reportCreditNanos = banks.length * reportIntervalNanos;
+      reportCreditTime = System.nanoTime();
+    }
+  }
+
+  /**
+   * Returns true when some bank has changes which have not yet been sent to the keyboard, for
+   * whatever reason: autoUpdate is off, a send failed, or the report budget deferred it. Use
+   * {@link #hasDeferredUpdates()} to ask only about banks the budget held back.
+   */
+  public boolean hasPendingUpdates() {
+    for (Bank bank : banks) {
+      if (bank.changed) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true when some bank was held back by the report budget and has not been sent since.
+   * Unlike {@link #hasPendingUpdates()}, changes which were never offered to
+   * {@link #updateKeyboard()}, such as a batch written with autoUpdate off, do not count.
+   */
+  public boolean hasDeferredUpdates() {
+    return getDeferredBanks() != 0;
+  }
+
+  // Bit mask of the banks held back by the report budget
+  int getDeferredBanks() {
+    int mask = 0;
+    for (int i = 0; i < banks.length; i++) {
+      if (banks[i].deferred) {
+        mask |= 1 << i;
+      }
+    }
+    return mask;
+  }
+
   public boolean forceUpdate() {
     for (Bank bank : banks) {
-      bank.changed = true;
+      bank.invalidate();
+      bank.markChanged();
     }
     return updateKeyboard();
   }
 
   public boolean updateKeyboard() {
+    return updateBanks(ALL_BANKS);
+  }
+
+  boolean updateKeyboard(long now) {
+    return updateBanks(ALL_BANKS, now);
+  }
+
+  /**
+   * Sends only the changed banks whose bit is set in {@code mask}, within the report budget.
+   */
+  boolean updateBanks(int mask) {
+    if (reportBudget > 0) {
+      return updateBanks(mask, System.nanoTime());
+    }
+    return sendBanks(mask);
+  }
+
+  private boolean sendBanks(int mask) {
     boolean success = true;
-    for (Bank bank : banks) {
-      success = success && bank.update();
+    for (int i = 0; i < banks.length; i++) {
+      if ((mask & 1 << i) != 0) {
+        success = success && banks[i].update();
+      }
+    }
+    return success;
+  }
+
+  synchronized boolean updateBanks(int mask, long now) {
+    if (reportBudget == 0) {
+      return sendBanks(mask);
+    }
+    long interval = reportIntervalNanos;
+    reportCreditNanos = Math.min(banks.length * interval, reportCreditNanos + now - reportCreditTime);
+    reportCreditTime = now;
+
+    int allowed = (int) (reportCreditNanos / interval);
+    int dirty = 0;
+    for (int i = 0; i < banks.length; i++) {
+      // A bank which returned to the colours last sent costs nothing, so it is not counted
+      if ((mask & 1 << i) != 0 && banks[i].changed && !banks[i].discardUnchanged()) {
+        dirty++;
+      }
+    }
+
+    boolean success = true;
+    if (dirty <= allowed) {
+      for (int i = 0; i < banks.length; i++) {
+        if ((mask & 1 << i) != 0 && banks[i].changed && success) {
+          success = banks[i].update();
+          reportCreditNanos -= interval;
+        }
+      }
+      return success;
+    }
+
+    // Over budget: rank the dirty banks by visible error weighted by how long they have waited
+    long[] scores = bankScores;
+    for (int i = 0; i < banks.length; i++) {
+      scores[i] = (mask & 1 << i) != 0 && banks[i].changed ? banks[i].score(now, interval) : -1;
+    }
+    while (allowed-- > 0 && success) {
+      int best = 0;
+      for (int i = 1; i < banks.length; i++) {
+        if (scores[i] > scores[best]) {
+          best = i;
+        }
+      }
+      success = banks[best].update();
+      reportCreditNanos -= interval;
+      scores[best] = -1;
+    }
+    for (int i = 0; i < banks.length; i++) {
+      if (scores[i] >= 0) {
+        banks[i].deferred = true;
+      }
     }
     return success;
   }
 
+  // Buffers a colour without sending it and returns the bit of the bank it went into, or 0
+  int bufferRGB(int row, int col, int rgb) {
+    if (!setRGB0(row, col, rgb)) {
+      return 0;
+    }
+    return 1 << (getSafeLEDIndex(row, col) / 24);
+  }
+
   private boolean setRGB0(int row, int col, RGB rgb) {
+    return setRGB0(row, col, rgb.toInteger());
+  }
+
+  private boolean setRGB0(int row, int col, int rgb) {
     byte led_index = getSafeLEDIndex(row, col);
 
     if (led_index == NOLED) {
@@ -300,7 +519,11 @@ public class WootingRGB implements AutoCloseable {
   private class Bank {
 
     final byte[] buffer = new byte[WOOTING_REPORT_SIZE - 1];
-    boolean changed;
+    final byte[] sent = new byte[WOOTING_REPORT_SIZE - 1];
+    volatile boolean changed;
+    volatile boolean deferred;
+    long changedSince;
+    boolean sentOnce;
 
     Bank(byte slave, byte start) {
       buffer[0] = (byte) 0xD0; // Magic word
@@ -316,10 +539,13 @@ public class WootingRGB implements AutoCloseable {
         buffer[126] = (byte) crc;
         buffer[127] = (byte) (crc >>> 8);
 
-        if (device.setOutputReport((byte) 0, buffer, WOOTING_REPORT_SIZE - 1) != WOOTING_REPORT_SIZE - 1) {
+        if (!output.sendReport(buffer, WOOTING_REPORT_SIZE - 1)) {
           return false;
         }
+        System.arraycopy(buffer, 0, sent, 0, buffer.length);
+        sentOnce = true;
         changed = false;
+        deferred = false;
       }
       return true;
     }
@@ -333,17 +559,60 @@ public class WootingRGB implements AutoCloseable {
       return rgb;
     }
 
-    synchronized void setRGB(int led_index, RGB rgb) {
+    synchronized void markChanged() {
+      if (!changed) {
+        changedSince = System.nanoTime();
+        changed = true;
+      }
+    }
+
+    // Weighted squared colour distance between the buffered and the last sent colours
+    synchronized long delta() {
+      long delta = 0;
+      for (int led_index = 0; led_index < 24; led_index++) {
+        int buffer_index = 5 + PWM_MEM_MAP[led_index];
+        int red = (0xff & buffer[buffer_index]) - (0xff & sent[buffer_index]);
+        int green = (0xff & buffer[buffer_index + 0x10]) - (0xff & sent[buffer_index + 0x10]);
+        int blue = (0xff & buffer[buffer_index + 0x20]) - (0xff & sent[buffer_index + 0x20]);
+        delta += 2 * red * red + 4 * green * green + 3 * blue * blue;
+      }
+      return delta;
+    }
+
+    // Forgets the last sent colours, so the next update sends the buffer even when unchanged
+    synchronized void invalidate() {
+      sentOnce = false;
+    }
+
+    // Clears the change when the buffer holds exactly what the keyboard was last sent
+    synchronized boolean discardUnchanged() {
+      if (changed && sentOnce && delta() == 0) {
+        changed = false;
+        deferred = false;
+        return true;
+      }
+      return false;
+    }
+
+    synchronized long score(long now, long interval) {
+      return (delta() + 1) * (1 + Math.max(0, now - changedSince) / interval);
+    }
+
+    synchronized int getRGB(int led_index) {
+      return getRGBBuffer(5 + PWM_MEM_MAP[led_index]);
+    }
+
+    synchronized void setRGB(int led_index, int rgb) {
       int buffer_index = 5 + PWM_MEM_MAP[led_index];
 
-      if (getRGBBuffer(buffer_index) == rgb.toInteger()) {
+      if (getRGBBuffer(buffer_index) == (0xffffff & rgb)) {
         return;
       }
 
-      buffer[buffer_index] = rgb.red;
-      buffer[buffer_index + 0x10] = rgb.green;
-      buffer[buffer_index + 0x20] = rgb.blue;
-      changed = true;
+      buffer[buffer_index] = (byte) (rgb >>> 16);
+      buffer[buffer_index + 0x10] = (byte) (rgb >>> 8);
+      buffer[buffer_index + 0x20] = (byte) rgb;
+      markChanged();
     }
   }
 
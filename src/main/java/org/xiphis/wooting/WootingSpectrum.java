@@ -0,0 +1,331 @@
+/*
+ * Copyright 2019 Antony T Curtis <atcurtis@gmail.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.xiphis.wooting;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+
+/**
+ * Audio spectrum visualizer which maps logarithmically spaced frequency bands onto the key
+ * columns, with peak-hold and decay.
+ *
+ * Audio is analysed in half overlapping windows of {@link #FFT_SIZE} samples. All buffers are
+ * allocated up front so the per block path does not allocate. Each frame is handed to a
+ * {@link FrameSink}, normally {@link WootingRGB#setFrame(int[])}, and the delay from the newest
+ * audio sample to the frame being sent is recorded for the frames which were sent.
+ */
+public class WootingSpectrum {
+
+  public static final int FFT_SIZE = 1024;
+  public static final int HOP_SIZE = FFT_SIZE / 2;
+
+  private static final int ROWS = WootingRGB.WOOTING_RGB_ROWS;
+  private static final int COLS = WootingRGB.WOOTING_RGB_COLS;
+
+  private static final float MIN_FREQUENCY = 40f;
+  private static final float MAX_FREQUENCY = 16000f;
+  private static final float FLOOR_DB = -60f;
+
+  private static final int PEAK_COLOR = 0xffffff;
+
+  private final FrameSink output;
+  private final float sampleRate;
+  private final RealFFT fft = new RealFFT(FFT_SIZE);
+
+  private final float[] samples = new float[FFT_SIZE];
+  private final float[] magnitudes = new float[FFT_SIZE / 2 + 1];
+  private final int[] bandStart = new int[COLS];
+  private final int[] bandEnd = new int[COLS];
+
+  // Column heights in 1/256 of a key
+  private final int[] level = new int[COLS];
+  private final int[] peak = new int[COLS];
+  private final int[] hold = new int[COLS];
+
+  private final int[] rowPalette = ColorKernels.palette(ROWS, 0x00ff00, 0xffff00, 0xff0000);
+  private final int[] frame = new int[ROWS * COLS];
+
+  private int holdBlocks = 8;
+  private int levelDecay = 96;
+  private int peakDecay = 32;
+
+  private long blocks;
+  private long failedBlocks;
+  private long lastLatencyNanos;
+  private long maxLatencyNanos;
+  private long totalLatencyNanos;
+
+  public WootingSpectrum(WootingRGB wooting, float sampleRate) {
+    this(wooting::setFrame, sampleRate);
+  }
+
+  public WootingSpectrum(FrameSink output, float sampleRate) {
+    if (!(sampleRate > 0)) {
+      throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+    }
+    this.output = output;
+    this.sampleRate = sampleRate;
+
+    float maxFrequency = Math.min(MAX_FREQUENCY, sampleRate / 2);
+    double ratio = Math.log(maxFrequency / MIN_FREQUENCY);
+    int previous = 1;
+    for (int col = 0; col < COLS; col++) {
+      int end = (int) Math.round(MIN_FREQUENCY * Math.exp(ratio * (col + 1) / COLS) * FFT_SIZE / sampleRate);
+      bandStart[col] = Math.min(previous, FFT_SIZE / 2);
+      bandEnd[col] = Math.min(Math.max(end, bandStart[col] + 1), FFT_SIZE / 2 + 1);
+      previous = bandEnd[col];
+    }
+  }
+
+  /**
+   * Receives each rendered frame and returns false when it could not be shown.
+   */
+  @FunctionalInterface
+  public interface FrameSink {
+    boolean sendFrame(int[] frame);
+  }
+
+  public float getSampleRate() {
+    return sampleRate;
+  }
+
+  public void setHoldBlocks(int holdBlocks) {
+    this.holdBlocks = holdBlocks;
+  }
+
+  public void setLevelDecay(int levelDecay) {
+    this.levelDecay = levelDecay;
+  }
+
+  public void setPeakDecay(int peakDecay) {
+    this.peakDecay = peakDecay;
+  }
+
+  public long getBlocks() {
+    return blocks;
+  }
+
+  /**
+   * Returns the number of frames the output failed to send, which are not counted as blocks.
+   */
+  public long getFailedBlocks() {
+    return failedBlocks;
+  }
+
+  public long getLastLatencyNanos() {
+    return lastLatencyNanos;
+  }
+
+  public long getMaxLatencyNanos() {
+    return maxLatencyNanos;
+  }
+
+  public long getAverageLatencyNanos() {
+    return blocks == 0 ? 0 : totalLatencyNanos / blocks;
+  }
+
+  /**
+   * Returns the current column height, in 1/256 of a key, for tests and diagnostics.
+   */
+  public int getLevel(int col) {
+    return level[col];
+  }
+
+  /**
+   * Analyses the last {@link #FFT_SIZE} samples after appending {@link #HOP_SIZE} new samples
+   * and sends a frame. {@code capturedNanos} is the {@link System#nanoTime()} at which the
+   * newest sample became available. Returns false when the frame could not be sent.
+   */
+  public boolean process(float[] block, long capturedNanos) {
+    System.arraycopy(samples, HOP_SIZE, samples, 0, FFT_SIZE - HOP_SIZE);
+    System.arraycopy(block, 0, samples, FFT_SIZE - HOP_SIZE, HOP_SIZE);
+
+    fft.magnitudes(samples, magnitudes);
+    updateLevels();
+    render();
+    if (!output.sendFrame(frame)) {
+      failedBlocks++;
+      return false;
+    }
+
+    long latency = System.nanoTime() - capturedNanos;
+    lastLatencyNanos = latency;
+    maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+    totalLatencyNanos += latency;
+    blocks++;
+    return true;
+  }
+
+  private void updateLevels() {
+    // Full scale sine through a Hann window peaks at FFT_SIZE / 4
+    float reference = FFT_SIZE / 4f;
+    for (int col = 0; col < COLS; col++) {
+      float max = 0f;
+      for (int bin = bandStart[col]; bin < bandEnd[col]; bin++) {
+        max = Math.max(max, magnitudes[bin]);
+      }
+      double db = 20 * Math.log10(Math.max(max / reference, 1e-9f));
+      int target = (int) Math.round(Math.max(0, Math.min(1, 1 - db / FLOOR_DB)) * ROWS * 256);
+
+      level[col] = Math.max(target, level[col] - levelDecay);
+
+      if (level[col] >= peak[col]) {
+        peak[col] = level[col];
+        hold[col] = holdBlocks;
+      } else if (hold[col] > 0) {
+        hold[col]--;
+      } else {
+        peak[col] = Math.max(level[col], peak[col] - peakDecay);
+      }
+    }
+  }
+
+  private void render() {
+    for (int row = 0; row < ROWS; row++) {
+      int height = ROWS - 1 - row;
+      int color = rowPalette[height];
+      int index = row * COLS;
+      for (int col = 0; col < COLS; col++, index++) {
+        int fill = Math.max(0, Math.min(ColorKernels.WEIGHT_ONE, level[col] - height * 256));
+        frame[index] = ColorKernels.lerp(0, color, fill);
+      }
+    }
+    for (int col = 0; col < COLS; col++) {
+      if (peak[col] > 0) {
+        int height = Math.min(ROWS - 1, peak[col] >> 8);
+        frame[(ROWS - 1 - height) * COLS + col] = PEAK_COLOR;
+      }
+    }
+  }
+
+  /**
+   * Converts the stream to 16 bit signed little endian PCM with its original rate and channels.
+   */
+  public static AudioInputStream toPCM(AudioInputStream in) {
+    AudioFormat source = in.getFormat();
+    AudioFormat target = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, source.getSampleRate(), 16,
+        source.getChannels(), 2 * source.getChannels(), source.getSampleRate(), false);
+    if (source.matches(target)) {
+      return in;
+    }
+    return AudioSystem.getAudioInputStream(target, in);
+  }
+
+  /**
+   * Reads the stream to the end, processing a block every {@link #HOP_SIZE} samples. When
+   * {@code realtime} is set, blocks are paced to the stream's sample clock. The stream must have
+   * the sample rate this visualizer was created for.
+   */
+  public long run(AudioInputStream in, boolean realtime) throws IOException, InterruptedException {
+    if (in.getFormat().getSampleRate() != sampleRate) {
+      throw new IllegalArgumentException("Stream sample rate " + in.getFormat().getSampleRate()
+          + " does not match " + sampleRate);
+    }
+    AudioInputStream pcm = toPCM(in);
+    int channels = pcm.getFormat().getChannels();
+    int frameSize = 2 * channels;
+    byte[] buffer = new byte[HOP_SIZE * frameSize];
+    float[] block = new float[HOP_SIZE];
+    float scale = 1f / (32768f * channels);
+    long blockNanos = TimeUnit.SECONDS.toNanos(HOP_SIZE) / (long) sampleRate;
+    long start = System.nanoTime();
+    long count = 0;
+
+    while (!Thread.currentThread().isInterrupted()) {
+      int filled = 0;
+      while (filled < buffer.length) {
+        int read = pcm.read(buffer, filled, buffer.length - filled);
+        if (read < 0) {
+          return count;
+        }
+        filled += read;
+      }
+
+      if (realtime) {
+        // Release the block once its last sample would have been heard
+        long delay = start + (count + 1) * blockNanos - System.nanoTime();
+        if (delay > 0) {
+          TimeUnit.NANOSECONDS.sleep(delay);
+        }
+      }
+      long captured = System.nanoTime();
+
+      // Mix down to mono
+      for (int i = 0, offset = 0; i < HOP_SIZE; i++) {
+        int sum = 0;
+        for (int c = 0; c < channels; c++, offset += 2) {
+          sum += (short) ((0xff & buffer[offset]) | buffer[offset + 1] << 8);
+        }
+        block[i] = sum * scale;
+      }
+
+      process(block, captured);
+      count++;
+    }
+    return count;
+  }
+
+  public static void main(String[] args)
+      throws IOException, UnsupportedAudioFileException, LineUnavailableException, InterruptedException {
+    System.setProperty("java.awt.headless", "true");
+
+    AudioInputStream in;
+    boolean realtime;
+    if (args.length == 0) {
+      AudioFormat format = new AudioFormat(44100f, 16, 1, true, false);
+      TargetDataLine line = AudioSystem.getTargetDataLine(format);
+      line.open(format, HOP_SIZE * format.getFrameSize() * 4);
+      line.start();
+      in = new AudioInputStream(line);
+      realtime = false;
+    } else if ("-".equals(args[0])) {
+      in = AudioSystem.getAudioInputStream(new BufferedInputStream(System.in));
+      realtime = false;
+    } else {
+      in = AudioSystem.getAudioInputStream(new File(args[0]));
+      realtime = true;
+    }
+
+    String[] devices = WootingRGB.listAll();
+    WootingSpectrum spectrum;
+    WootingRGB wooting = null;
+    if (devices.length > 0) {
+      wooting = WootingRGB.open(devices[0]);
+      wooting.resetRGB();
+      spectrum = new WootingSpectrum(wooting, in.getFormat().getSampleRate());
+    } else {
+      spectrum = new WootingSpectrum(frame -> true, in.getFormat().getSampleRate());
+    }
+
+    try {
+      spectrum.run(in, realtime);
+    } finally {
+      if (wooting != null) {
+        wooting.resetRGB();
+        wooting.close();
+      }
+      in.close();
+    }
+
+    System.out.printf("blocks=%d failed=%d latency avg=%dus max=%dus (plus %dus of block buffering)\n",
+        spectrum.getBlocks(),
+        spectrum.getFailedBlocks(),
+        TimeUnit.NANOSECONDS.toMicros(spectrum.getAverageLatencyNanos()),
+        TimeUnit.NANOSECONDS.toMicros(spectrum.getMaxLatencyNanos()),
+        TimeUnit.SECONDS.toMicros(HOP_SIZE) / (long) spectrum.getSampleRate());
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2019 Antony T Curtis <atcurtis@gmail.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.xiphis.wooting;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Time based colour fades for individual keys or rectangular regions.
+ *
+ * Active fades live in primitive arrays indexed by key position and are advanced together by
+ * {@link #tick(long)}, normally called from {@link #run()} on a dedicated thread. Only keys
+ * whose colour actually changes are written, and each tick sends only the banks holding those
+ * keys. While the keyboard's autoUpdate is off, fades are buffered but left for the owner of
+ * the batch to send.
+ */
+public class WootingTransitions implements Runnable {
+
+  private static final int KEYS = WootingRGB.WOOTING_RGB_ROWS * WootingRGB.WOOTING_RGB_COLS;
+  private static final int STEPS = 1024;
+
+  public enum Easing {
+    LINEAR {
+      @Override
+      double apply(double t) {
+        return t;
+      }
+    },
+    EASE_IN {
+      @Override
+      double apply(double t) {
+        return t * t;
+      }
+    },
+    EASE_OUT {
+      @Override
+      double apply(double t) {
+        return 1 - (1 - t) * (1 - t);
+      }
+    },
+    EASE_IN_OUT {
+      @Override
+      double apply(double t) {
+        return t * t * (3 - 2 * t);
+      }
+    };
+
+    // Interpolation weight (0 .. ColorKernels.WEIGHT_ONE) for each progress step
+    final int[] table = new int[STEPS + 1];
+
+    Easing() {
+      for (int i = 0; i <= STEPS; i++) {
+        table[i] = (int) Math.round(apply((double) i / STEPS) * ColorKernels.WEIGHT_ONE);
+      }
+    }
+
+    abstract double apply(double t);
+  }
+
+  private static final Easing[] EASINGS = Easing.values();
+
+  private final WootingRGB wooting;
+  private final long periodNanos;
+
+  private final int[] from = new int[KEYS];
+  private final int[] to = new int[KEYS];
+  private final int[] current = new int[KEYS];
+  private final long[] start = new long[KEYS];
+  private final long[] duration = new long[KEYS];
+  private final byte[] curve = new byte[KEYS];
+
+  // Dense list of keys with an active fade, and each key's position within it (or -1)
+  private final int[] active = new int[KEYS];
+  private final int[] slot = new int[KEYS];
+  private int activeCount;
+
+  public WootingTransitions(WootingRGB wooting, int framesPerSecond) {
+    if (framesPerSecond <= 0) {
+      throw new IllegalArgumentException("framesPerSecond must be positive");
+    }
+    this.wooting = wooting;
+    this.periodNanos = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+    Arrays.fill(slot, -1);
+  }
+
+  public synchronized int getActiveCount() {
+    return activeCount;
+  }
+
+  public synchronized boolean fadeTo(int row, int col, int rgb, long time, TimeUnit unit, Easing easing) {
+    if (!fadeTo0(row, col, rgb, System.nanoTime(), unit.toNanos(time), easing)) {
+      return false;
+    }
+    notifyAll();
+    return true;
+  }
+
+  public boolean fadeTo(int row, int col, WootingRGB.RGB rgb, long time, TimeUnit unit, Easing easing) {
+    return fadeTo(row, col, rgb.toInteger(), time, unit, easing);
+  }
+
+  /**
+   * Fades every key in the rows {@code fromRow .. toRow - 1} and columns
+   * {@code fromCol .. toCol - 1}, returning the number of keys affected.
+   */
+  public synchronized int fadeTo(int fromRow, int fromCol, int toRow, int toCol, int rgb, long time, TimeUnit unit, Easing easing) {
+    long now = System.nanoTime();
+    long nanos = unit.toNanos(time);
+    int count = 0;
+    for (int row = fromRow; row < toRow; row++) {
+      for (int col = fromCol; col < toCol; col++) {
+        if (fadeTo0(row, col, rgb, now, nanos, easing)) {
+          count++;
+        }
+      }
+    }
+    if (count > 0) {
+      notifyAll();
+    }
+    return count;
+  }
+
+  public synchronized void cancel(int row, int col) {
+    if (row >= 0 && col >= 0 && row < WootingRGB.WOOTING_RGB_ROWS && col < WootingRGB.WOOTING_RGB_COLS) {
+      int key = row * WootingRGB.WOOTING_RGB_COLS + col;
+      if (slot[key] >= 0) {
+        remove(slot[key]);
+      }
+    }
+  }
+
+  public synchronized void cancelAll() {
+    while (activeCount > 0) {
+      remove(activeCount - 1);
+    }
+  }
+
+  private boolean fadeTo0(int row, int col, int rgb, long now, long nanos, Easing easing) {
+    int present = wooting.getRGB(row, col);
+    if (present < 0) {
+      return false;
+    }
+
+    int key = row * WootingRGB.WOOTING_RGB_COLS + col;
+    if (slot[key] < 0) {
+      slot[key] = activeCount;
+      active[activeCount++] = key;
+      current[key] = present;
+    }
+
+    // A fade which replaces one in progress continues from the colour last written
+    from[key] = current[key];
+    to[key] = 0xffffff & rgb;
+    start[key] = now;
+    duration[key] = Math.max(0, nanos);
+    curve[key] = (byte) easing.ordinal();
+    return true;
+  }
+
+  private void remove(int index) {
+    int key = active[index];
+    int last = active[--activeCount];
+    active[index] = last;
+    slot[last] = index;
+    slot[key] = -1;
+  }
+
+  /**
+   * Advances all active fades to the given {@link System#nanoTime()} and updates the keyboard.
+   */
+  public boolean tick(long now) {
+    return update(advance(now));
+  }
+
+  // Sends the banks written by a tick, after the engine lock has been released
+  private boolean update(int mask) {
+    if (!wooting.isAutoUpdate()) {
+      return true;
+    }
+    // Include banks held back by the keyboard's report budget on earlier ticks
+    mask |= wooting.getDeferredBanks();
+    return mask == 0 || wooting.updateBanks(mask);
+  }
+
+  // Advances the active fades and returns the mask of banks which were written
+  private synchronized int advance(long now) {
+    int mask = 0;
+    for (int i = 0; i < activeCount; ) {
+      int key = active[i];
+      long elapsed = now - start[key];
+      int step = duration[key] <= 0 || elapsed >= duration[key]
+          ? STEPS : (int) Math.max(0, elapsed * STEPS / duration[key]);
+      int rgb = ColorKernels.lerp(from[key], to[key], EASINGS[curve[key]].table[step]);
+
+      if (rgb != current[key]) {
+        current[key] = rgb;
+        mask |= wooting.bufferRGB(key / WootingRGB.WOOTING_RGB_COLS, key % WootingRGB.WOOTING_RGB_COLS, rgb);
+      }
+
+      if (step == STEPS) {
+        remove(i);
+      } else {
+        i++;
+      }
+    }
+    return mask;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        long now;
+        int mask;
+        synchronized (this) {
+          while (activeCount == 0 && !(wooting.isAutoUpdate() && wooting.hasDeferredUpdates())) {
+            wait();
+          }
+          // Read under the lock so that no fade can start after this tick's time
+          now = System.nanoTime();
+          mask = advance(now);
+        }
+        update(mask);
+
+        long delay = now + periodNanos - System.nanoTime();
+        if (delay > 0) {
+          TimeUnit.NANOSECONDS.sleep(delay);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -19,19 +19,19 @@ public class WootingWaterfall {
   final int xsize = 48;
   final int ysize = 32;
 
-  final WootingRGB.RGB[] palette;
+  final int[] palette;
   final int[][] fire = new int[ysize][xsize];
   private final WootingRGB wooting;
   private static final OperatingSystemMXBean OSMBEAN = ManagementFactory.getOperatingSystemMXBean();
 
   public WootingWaterfall(WootingRGB wooting) {
     this.wooting = wooting;
-    this.palette = new WootingRGB.RGB[512];
+    this.palette = new int[512];
     for (int i = 0; i < 256; i++) {
-      palette[i] = WootingRGB.RGB.of(Math.min(255, i * 2), Math.max(0, (i - 128) * 2), 0);
+      palette[i] = ColorKernels.pack(Math.min(255, i * 2), Math.max(0, (i - 128) * 2), 0);
     }
     for (int i = 0; i < 256; i++) {
-      palette[i + 256] = WootingRGB.RGB.of(Math.min(255, 512 - i * 2), Math.min(255, 512 - i * 2), i);
+      palette[i + 256] = ColorKernels.pack(Math.min(255, 512 - i * 2), Math.min(255, 512 - i * 2), i);
     }
   }
 
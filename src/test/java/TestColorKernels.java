@@ -0,0 +1,111 @@
+import org.junit.Assert;
+import org.junit.Test;
+import org.xiphis.wooting.ColorKernels;
+
+
+public class TestColorKernels {
+
+  @Test
+  public void hsvRoundTrip() {
+    for (int rgb = 0; rgb < 0x1000000; rgb += 7919) {
+      Assert.assertEquals(rgb, ColorKernels.hsvToRgb(ColorKernels.rgbToHsv(rgb)));
+    }
+    Assert.assertEquals(0xff0000, ColorKernels.hsvToRgb(ColorKernels.packHSV(0, 255, 255)));
+    Assert.assertEquals(0x00ff00, ColorKernels.hsvToRgb(ColorKernels.packHSV(512, 255, 255)));
+    Assert.assertEquals(0x0000ff, ColorKernels.hsvToRgb(ColorKernels.packHSV(1024, 255, 255)));
+  }
+
+  @Test
+  public void hslRoundTrip() {
+    for (int rgb = 0; rgb < 0x1000000; rgb += 7919) {
+      int back = ColorKernels.hslToRgb(ColorKernels.rgbToHsl(rgb));
+      Assert.assertTrue(Math.abs(ColorKernels.red(rgb) - ColorKernels.red(back)) <= 1);
+      Assert.assertTrue(Math.abs(ColorKernels.green(rgb) - ColorKernels.green(back)) <= 1);
+      Assert.assertTrue(Math.abs(ColorKernels.blue(rgb) - ColorKernels.blue(back)) <= 1);
+    }
+  }
+
+  @Test
+  public void gradient() {
+    int[] palette = ColorKernels.palette(5, 0x000000, 0xff0000, 0xffff00);
+    Assert.assertArrayEquals(new int[] { 0x000000, 0x7f0000, 0xff0000, 0xff7f00, 0xffff00 }, palette);
+  }
+
+  @Test
+  public void largeGradient() {
+    int[] palette = ColorKernels.palette(5_000_000, 0x000000, 0xff0000, 0xffff00);
+    Assert.assertEquals(0x000000, palette[0]);
+    Assert.assertEquals(0xffff00, palette[palette.length - 1]);
+  }
+
+  @Test
+  public void blend() {
+    int[] under = { 0x808080, 0xffffff, 0xff0001 };
+    int[] over = { 0x90ff01, 0x123456, 0x010003 };
+    int[] out = new int[3];
+
+    ColorKernels.blend(ColorKernels.Blend.ADD, under, over, out, out.length);
+    Assert.assertEquals(0xffff81, out[0]);
+
+    ColorKernels.blend(ColorKernels.Blend.MULTIPLY, under, over, out, out.length);
+    Assert.assertEquals(0x123456, out[1]);
+
+    ColorKernels.blend(ColorKernels.Blend.AVERAGE, under, over, out, out.length);
+    Assert.assertEquals(0x800002, out[2]);
+
+    Assert.assertEquals(0xc0c0c0, ColorKernels.screen(0x808080, 0x808080));
+
+    ColorKernels.blend(ColorKernels.Blend.SUBTRACT, under, over, out, out.length);
+    Assert.assertArrayEquals(new int[] { 0x00007f, 0xedcba9, 0xfe0000 }, out);
+
+    ColorKernels.blend(ColorKernels.Blend.SCREEN, under, over, out, out.length);
+    Assert.assertArrayEquals(new int[] { 0xc8ff80, 0xffffff, 0xff0004 }, out);
+
+    ColorKernels.blend(ColorKernels.Blend.LIGHTEN, under, over, out, out.length);
+    Assert.assertArrayEquals(new int[] { 0x90ff80, 0xffffff, 0xff0003 }, out);
+
+    ColorKernels.blend(ColorKernels.Blend.DARKEN, under, over, out, out.length);
+    Assert.assertArrayEquals(new int[] { 0x808001, 0x123456, 0x010001 }, out);
+  }
+
+  @Test
+  public void lerpFrame() {
+    int[] from = { 0x000000, 0x102030, 0xff00ff };
+    int[] to = { 0xfefefe, 0xffffff, 0x00ff00 };
+    int[] out = new int[3];
+
+    ColorKernels.lerp(from, to, out, 0, out.length);
+    Assert.assertArrayEquals(from, out);
+
+    ColorKernels.lerp(from, to, out, ColorKernels.WEIGHT_ONE, out.length);
+    Assert.assertArrayEquals(to, out);
+
+    ColorKernels.lerp(from, to, out, 128, out.length);
+    Assert.assertEquals(0x7f7f7f, out[0]);
+  }
+
+  @Test
+  public void scale() {
+    int[] frame = { 0xffffff, 0x804020 };
+    int[] out = new int[2];
+
+    ColorKernels.scale(frame, out, 0, out.length);
+    Assert.assertArrayEquals(new int[] { 0x000000, 0x000000 }, out);
+
+    ColorKernels.scale(frame, out, 128, out.length);
+    Assert.assertArrayEquals(new int[] { 0x7f7f7f, 0x402010 }, out);
+
+    ColorKernels.scale(frame, out, ColorKernels.WEIGHT_ONE, out.length);
+    Assert.assertArrayEquals(frame, out);
+  }
+
+  @Test
+  public void lookupClamps() {
+    int[] palette = { 0x0000ff, 0x00ff00, 0xff0000 };
+    int[] indices = { -5, 0, 1, 2, 99 };
+    int[] out = new int[indices.length];
+
+    ColorKernels.lookup(indices, palette, out, out.length);
+    Assert.assertArrayEquals(new int[] { 0x0000ff, 0x0000ff, 0x00ff00, 0xff0000, 0xff0000 }, out);
+  }
+}
@@ -0,0 +1,89 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xiphis.wooting.WootingRGB;
+import org.xiphis.wooting.WootingSpectrum;
+
+
+public class TestSpectrum {
+
+  private static final float SAMPLE_RATE = 44100f;
+
+  private static AudioInputStream sineWav(double frequency, int channels) throws IOException, UnsupportedAudioFileException {
+    AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, channels, true, false);
+    int frames = (int) SAMPLE_RATE / 2;
+    byte[] pcm = new byte[frames * format.getFrameSize()];
+    for (int i = 0, offset = 0; i < frames; i++) {
+      short sample = (short) (16384 * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE));
+      for (int c = 0; c < channels; c++) {
+        pcm[offset++] = (byte) sample;
+        pcm[offset++] = (byte) (sample >> 8);
+      }
+    }
+
+    // Round trip through a WAV file to exercise the same path as file input
+    ByteArrayOutputStream wav = new ByteArrayOutputStream();
+    AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), format, frames), AudioFileFormat.Type.WAVE, wav);
+    return AudioSystem.getAudioInputStream(new ByteArrayInputStream(wav.toByteArray()));
+  }
+
+  private static int loudestColumn(WootingSpectrum spectrum) {
+    int best = 0;
+    for (int col = 1; col < WootingRGB.WOOTING_RGB_COLS; col++) {
+      if (spectrum.getLevel(col) > spectrum.getLevel(best)) {
+        best = col;
+      }
+    }
+    return best;
+  }
+
+  @Test
+  public void tracksFrequency() throws Exception {
+    int[] frames = new int[1];
+    WootingSpectrum low = new WootingSpectrum(frame -> {
+      frames[0]++;
+      return true;
+    }, SAMPLE_RATE);
+    long blocks = low.run(sineWav(200, 1), false);
+    Assert.assertEquals(blocks, frames[0]);
+    Assert.assertTrue(blocks > 0);
+
+    WootingSpectrum high = new WootingSpectrum(frame -> true, SAMPLE_RATE);
+    high.run(sineWav(4000, 2), false);
+
+    Assert.assertTrue(loudestColumn(low) < loudestColumn(high));
+    Assert.assertTrue(high.getMaxLatencyNanos() > 0);
+  }
+
+  @Test
+  public void silenceIsDark() throws Exception {
+    int[] lit = new int[1];
+    WootingSpectrum spectrum = new WootingSpectrum(frame -> {
+      for (int rgb : frame) {
+        if (rgb != 0) {
+          lit[0]++;
+        }
+      }
+      return true;
+    }, SAMPLE_RATE);
+    spectrum.run(sineWav(0, 1), false);
+    Assert.assertEquals(0, lit[0]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sampleRateMismatch() throws Exception {
+    new WootingSpectrum(frame -> true, 48000f).run(sineWav(200, 1), false);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sampleRateNotSpecified() {
+    new WootingSpectrum(frame -> true, AudioSystem.NOT_SPECIFIED);
+  }
+}
@@ -0,0 +1,26 @@
+package org.xiphis.wooting;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Report sink for tests which records the bank number of every report it accepts.
+ */
+class RecordingSink implements WootingRGB.ReportSink {
+
+  // Bank number of each report, from its slave number and register start address
+  final List<Integer> banks = new ArrayList<>();
+
+  // Rejects every report while set, like a device which stopped responding
+  boolean failing;
+
+  @Override
+  public boolean sendReport(byte[] report, int length) {
+    if (failing) {
+      return false;
+    }
+    banks.add(report[3] * 2 + (report[4] != 0 ? 1 : 0));
+    return true;
+  }
+}
@@ -0,0 +1,65 @@
+package org.xiphis.wooting;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TestFrame {
+
+  private int reports;
+
+  private final WootingRGB wooting = new WootingRGB((report, length) -> {
+    reports++;
+    return true;
+  });
+
+  @Test
+  public void setFrame() {
+    int[] frame = new int[WootingRGB.WOOTING_RGB_ROWS * WootingRGB.WOOTING_RGB_COLS];
+    for (int i = 0; i < frame.length; i++) {
+      frame[i] = 0x010203 * (i + 1);
+    }
+
+    Assert.assertTrue(wooting.setFrame(frame));
+    Assert.assertEquals(5, reports);
+    Assert.assertFalse(wooting.hasPendingUpdates());
+
+    for (int row = 0; row < WootingRGB.WOOTING_RGB_ROWS; row++) {
+      for (int col = 0; col < WootingRGB.WOOTING_RGB_COLS; col++) {
+        int rgb = wooting.getRGB(row, col);
+        if (rgb >= 0) {
+          Assert.assertEquals(frame[row * WootingRGB.WOOTING_RGB_COLS + col] & 0xffffff, rgb);
+        }
+      }
+    }
+    Assert.assertEquals(-1, wooting.getRGB(0, 1));
+
+    // An unchanged frame sends nothing
+    Assert.assertTrue(wooting.setFrame(frame));
+    Assert.assertEquals(5, reports);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void frameTooSmall() {
+    wooting.setFrame(new int[WootingRGB.WOOTING_RGB_COLS]);
+  }
+
+  @Test
+  public void setPackedRGB() {
+    Assert.assertTrue(wooting.setRGB(2, 3, 0xff123456));
+    Assert.assertEquals(0x123456, wooting.getRGB(2, 3));
+    Assert.assertEquals(1, reports);
+
+    Assert.assertFalse(wooting.setRGB(0, 1, 0x123456));
+    Assert.assertFalse(wooting.setRGB(WootingRGB.WOOTING_RGB_ROWS, 0, 0x123456));
+    Assert.assertEquals(1, reports);
+
+    // Buffered only while autoUpdate is off
+    wooting.setAutoUpdate(false);
+    Assert.assertTrue(wooting.setRGB(2, 3, 0x654321));
+    Assert.assertEquals(1, reports);
+    Assert.assertTrue(wooting.hasPendingUpdates());
+    wooting.setAutoUpdate(true);
+    Assert.assertEquals(2, reports);
+  }
+}
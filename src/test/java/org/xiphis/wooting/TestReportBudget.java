@@ -0,0 +1,130 @@
+package org.xiphis.wooting;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TestReportBudget {
+
+  private final RecordingSink sink = new RecordingSink();
+  private final WootingRGB wooting = new WootingRGB(sink);
+
+  private void fill(int rgb) {
+    for (int row = 0; row < WootingRGB.WOOTING_RGB_ROWS; row++) {
+      for (int col = 0; col < WootingRGB.WOOTING_RGB_COLS; col++) {
+        wooting.bufferRGB(row, col, rgb);
+      }
+    }
+  }
+
+  @Test
+  public void largestChangeFirst() {
+    wooting.setReportBudget(1);
+    long now = System.nanoTime();
+
+    // Spend the initial burst
+    fill(0x202020);
+    Assert.assertTrue(wooting.updateKeyboard(now));
+    Assert.assertEquals(5, sink.banks.size());
+    sink.banks.clear();
+
+    // A barely visible change in bank 0 and a large one in bank 4
+    wooting.bufferRGB(0, 0, 0x212121);
+    for (int col = 17; col < 21; col++) {
+      wooting.bufferRGB(0, col, 0xffffff);
+      wooting.bufferRGB(1, col, 0xffffff);
+    }
+
+    now += TimeUnit.SECONDS.toNanos(1);
+    Assert.assertTrue(wooting.updateKeyboard(now));
+    Assert.assertEquals(1, sink.banks.size());
+    Assert.assertEquals(4, (int) sink.banks.get(0));
+    Assert.assertTrue(wooting.hasDeferredUpdates());
+
+    now += TimeUnit.SECONDS.toNanos(1);
+    Assert.assertTrue(wooting.updateKeyboard(now));
+    Assert.assertEquals(0, (int) sink.banks.get(1));
+    Assert.assertFalse(wooting.hasDeferredUpdates());
+  }
+
+  @Test
+  public void budgetOverTime() {
+    wooting.setReportBudget(100);
+    long now = System.nanoTime();
+
+    // Every bank changes every millisecond for one second
+    for (int ms = 0; ms < 1000; ms++) {
+      fill((ms & 1) == 0 ? 0x010101 : 0x020202);
+      Assert.assertTrue(wooting.updateKeyboard(now + TimeUnit.MILLISECONDS.toNanos(ms)));
+    }
+    Assert.assertTrue(sink.banks.size() >= 95);
+    Assert.assertTrue(sink.banks.size() <= 105);
+    for (int bank = 0; bank < 5; bank++) {
+      Assert.assertTrue(sink.banks.contains(bank));
+    }
+
+    // Deferred banks drain once writes stop
+    Assert.assertTrue(wooting.hasDeferredUpdates());
+    for (int ms = 1000; ms < 1100 && wooting.hasDeferredUpdates(); ms++) {
+      wooting.updateKeyboard(now + TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+    Assert.assertFalse(wooting.hasDeferredUpdates());
+    Assert.assertFalse(wooting.hasPendingUpdates());
+  }
+
+  @Test
+  public void revertedBankIsNotSent() {
+    wooting.setReportBudget(1);
+    long now = System.nanoTime();
+
+    fill(0x202020);
+    Assert.assertTrue(wooting.updateKeyboard(now));
+    sink.banks.clear();
+
+    // Bank 0 blinks back to what was sent while bank 4 really changes
+    wooting.bufferRGB(0, 0, 0xffffff);
+    wooting.bufferRGB(0, 0, 0x202020);
+    wooting.bufferRGB(0, 17, 0xffffff);
+
+    now += TimeUnit.SECONDS.toNanos(1);
+    Assert.assertTrue(wooting.updateKeyboard(now));
+    Assert.assertEquals(1, sink.banks.size());
+    Assert.assertEquals(4, (int) sink.banks.get(0));
+    Assert.assertFalse(wooting.hasPendingUpdates());
+    Assert.assertFalse(wooting.hasDeferredUpdates());
+  }
+
+  @Test
+  public void forceUpdateWithBudget() {
+    fill(0x123456);
+    Assert.assertTrue(wooting.updateKeyboard());
+    sink.banks.clear();
+
+    // The keyboard may no longer match the buffer, so every bank is sent again
+    wooting.setReportBudget(100);
+    Assert.assertTrue(wooting.forceUpdate());
+    Assert.assertEquals(5, sink.banks.size());
+    Assert.assertFalse(wooting.hasPendingUpdates());
+  }
+
+  @Test
+  public void timedUpdateWithoutBudget() {
+    fill(0x123456);
+    Assert.assertTrue(wooting.updateKeyboard(System.nanoTime()));
+    Assert.assertEquals(5, sink.banks.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void budgetTooLarge() {
+    wooting.setReportBudget(Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void unlimitedSendsEveryBank() {
+    fill(0x123456);
+    Assert.assertTrue(wooting.updateKeyboard());
+    Assert.assertEquals(5, sink.banks.size());
+    Assert.assertFalse(wooting.hasDeferredUpdates());
+  }
+}
@@ -0,0 +1,35 @@
+package org.xiphis.wooting;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TestSpectrumOutput {
+
+  private final RecordingSink sink = new RecordingSink();
+  private final WootingSpectrum spectrum = new WootingSpectrum(new WootingRGB(sink), 44100f);
+
+  private static float[] sine(double frequency) {
+    float[] block = new float[WootingSpectrum.HOP_SIZE];
+    for (int i = 0; i < block.length; i++) {
+      block[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / 44100));
+    }
+    return block;
+  }
+
+  @Test
+  public void framesReachTheKeyboard() {
+    Assert.assertTrue(spectrum.process(sine(1000), System.nanoTime()));
+    Assert.assertFalse(sink.banks.isEmpty());
+    Assert.assertEquals(1, spectrum.getBlocks());
+    Assert.assertEquals(0, spectrum.getFailedBlocks());
+
+    // A failed send is counted apart and leaves the latency statistics alone
+    long latency = spectrum.getLastLatencyNanos();
+    sink.failing = true;
+    Assert.assertFalse(spectrum.process(new float[WootingSpectrum.HOP_SIZE], System.nanoTime() - 1000000000L));
+    Assert.assertEquals(1, spectrum.getBlocks());
+    Assert.assertEquals(1, spectrum.getFailedBlocks());
+    Assert.assertEquals(latency, spectrum.getLastLatencyNanos());
+  }
+}
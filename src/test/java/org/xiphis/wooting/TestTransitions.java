@@ -0,0 +1,114 @@
+package org.xiphis.wooting;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TestTransitions {
+
+  private final RecordingSink sink = new RecordingSink();
+  private final WootingRGB wooting = new WootingRGB(sink);
+  private final WootingTransitions transitions = new WootingTransitions(wooting, 50);
+
+  private static long later(long time, TimeUnit unit) {
+    return System.nanoTime() + unit.toNanos(time);
+  }
+
+  @Test
+  public void easingTables() {
+    for (WootingTransitions.Easing easing : WootingTransitions.Easing.values()) {
+      int[] table = easing.table;
+      Assert.assertEquals(0, table[0]);
+      Assert.assertEquals(ColorKernels.WEIGHT_ONE, table[table.length - 1]);
+      for (int i = 1; i < table.length; i++) {
+        Assert.assertTrue(table[i] >= table[i - 1]);
+      }
+    }
+  }
+
+  @Test
+  public void fadeCompletes() {
+    Assert.assertTrue(transitions.fadeTo(2, 3, 0xff8000, 100, TimeUnit.MILLISECONDS, WootingTransitions.Easing.LINEAR));
+    Assert.assertEquals(1, transitions.getActiveCount());
+
+    Assert.assertTrue(transitions.tick(later(10, TimeUnit.SECONDS)));
+    Assert.assertEquals(0xff8000, wooting.getRGB(2, 3));
+    Assert.assertEquals(0, transitions.getActiveCount());
+  }
+
+  @Test
+  public void sendsOnlyFadedBanks() {
+    // Bank 4 has a change which nobody has asked to send
+    wooting.bufferRGB(0, 17, 0x00ff00);
+    transitions.fadeTo(0, 0, 0xff8000, 50, TimeUnit.MILLISECONDS, WootingTransitions.Easing.LINEAR);
+
+    Assert.assertTrue(transitions.tick(later(1, TimeUnit.SECONDS)));
+    Assert.assertEquals(1, sink.banks.size());
+    Assert.assertEquals(0, (int) sink.banks.get(0));
+    Assert.assertTrue(wooting.hasPendingUpdates());
+  }
+
+  @Test
+  public void leavesBatchToOwner() {
+    wooting.setAutoUpdate(false);
+    wooting.setRGB(5, 0, 0x00ff00);
+    transitions.fadeTo(0, 0, 0xff8000, 50, TimeUnit.MILLISECONDS, WootingTransitions.Easing.LINEAR);
+
+    // The fade is buffered, but the other caller's unfinished batch is not sent
+    Assert.assertTrue(transitions.tick(later(1, TimeUnit.SECONDS)));
+    Assert.assertEquals(0xff8000, wooting.getRGB(0, 0));
+    Assert.assertEquals(0, sink.banks.size());
+    Assert.assertTrue(wooting.hasPendingUpdates());
+
+    wooting.setAutoUpdate(true);
+    Assert.assertFalse(wooting.hasPendingUpdates());
+  }
+
+  @Test
+  public void fadeToMissingKey() {
+    Assert.assertFalse(transitions.fadeTo(0, 1, 0xffffff, 100, TimeUnit.MILLISECONDS, WootingTransitions.Easing.LINEAR));
+    Assert.assertEquals(0, transitions.getActiveCount());
+  }
+
+  @Test
+  public void removeFromMiddle() {
+    transitions.fadeTo(1, 1, 0x0000ff, 10, TimeUnit.SECONDS, WootingTransitions.Easing.EASE_IN);
+    transitions.fadeTo(1, 2, 0x00ff00, 0, TimeUnit.SECONDS, WootingTransitions.Easing.EASE_OUT);
+    transitions.fadeTo(1, 3, 0xff0000, 10, TimeUnit.SECONDS, WootingTransitions.Easing.EASE_IN_OUT);
+    Assert.assertEquals(3, transitions.getActiveCount());
+
+    // The middle fade completes at once and the other two carry on
+    transitions.tick(System.nanoTime());
+    Assert.assertEquals(0x00ff00, wooting.getRGB(1, 2));
+    Assert.assertEquals(2, transitions.getActiveCount());
+
+    transitions.cancel(1, 1);
+    Assert.assertEquals(1, transitions.getActiveCount());
+
+    transitions.tick(later(20, TimeUnit.SECONDS));
+    Assert.assertEquals(0xff0000, wooting.getRGB(1, 3));
+    Assert.assertNotEquals(0x0000ff, wooting.getRGB(1, 1));
+    Assert.assertEquals(0, transitions.getActiveCount());
+  }
+
+  @Test
+  public void zeroDurationBeforeStart() {
+    transitions.fadeTo(0, 0, 0x123456, 0, TimeUnit.MILLISECONDS, WootingTransitions.Easing.LINEAR);
+
+    // A tick whose time was read before the fade started must not divide by zero
+    Assert.assertTrue(transitions.tick(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5)));
+    Assert.assertEquals(0x123456, wooting.getRGB(0, 0));
+    Assert.assertEquals(0, transitions.getActiveCount());
+  }
+
+  @Test
+  public void regionFade() {
+    Assert.assertEquals(WootingRGB.WOOTING_RGB_COLS,
+        transitions.fadeTo(2, 0, 3, WootingRGB.WOOTING_RGB_COLS, 0x808080, 50, TimeUnit.MILLISECONDS, WootingTransitions.Easing.LINEAR));
+    transitions.tick(later(1, TimeUnit.SECONDS));
+    for (int col = 0; col < WootingRGB.WOOTING_RGB_COLS; col++) {
+      Assert.assertEquals(0x808080, wooting.getRGB(2, col));
+    }
+  }
+}